@@ -7,10 +7,13 @@ import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Locale;
+import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import pl.edu.pja.event.ChurnEventLog;
+import pl.edu.pja.event.ChurnEventRecorder;
 import pl.edu.pja.organization.Organization;
 import pl.edu.pja.organization.OrganizationFactory;
 import pl.edu.pja.organization.Result;
@@ -18,6 +21,8 @@ import pl.edu.pja.strategy.SimulationStrategy;
 
 public class Main {
 
+    private static final boolean RECORD_CHURN_EVENTS = Boolean.getBoolean("socinfo.churnEvents");
+
     public static void main(String[] args) throws IOException {
         Main main = new Main();
         main.runSimulation();
@@ -37,7 +42,29 @@ public class Main {
     private void shuffleSubordinates(int levels, SimulationStrategy strategy) {
         createdOutputDirectory(strategy);
         int subordinatesPerManager = 8;
-        IntStream.range(0, 1000).parallel().forEach(i -> runSingleSimulation(levels, subordinatesPerManager, i, strategy));
+        Optional<ChurnEventLog> eventLog = openEventLog(levels, subordinatesPerManager, strategy);
+        IntStream.range(0, 1000).parallel().forEach(i -> runSingleSimulation(levels, subordinatesPerManager, i, strategy, eventLog));
+        eventLog.ifPresent(this::closeEventLog);
+    }
+
+    private Optional<ChurnEventLog> openEventLog(int levels, int subordinates, SimulationStrategy strategy) {
+        if (!RECORD_CHURN_EVENTS)
+            return Optional.empty();
+        try {
+            String fileName = String.format("events_%d_x_%d.bin", levels, subordinates);
+            return Optional.of(ChurnEventLog.create(Paths.get("work", "res", strategy.name(), fileName)));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
+
+    private void closeEventLog(ChurnEventLog eventLog) {
+        try {
+            eventLog.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     private void createdOutputDirectory(SimulationStrategy strategy) {
@@ -48,12 +75,18 @@ public class Main {
         }
     }
 
-    private void runSingleSimulation(int levels, int subordinates, int i, SimulationStrategy strategy) {
+    private void runSingleSimulation(int levels, int subordinates, int i, SimulationStrategy strategy,
+            Optional<ChurnEventLog> eventLog) {
         double knowledgeUsabilityRate = 0.75d;
-        Organization org = OrganizationFactory.createCorporation(levels, subordinates, knowledgeUsabilityRate, strategy);
-        org.start();
-        List<String> results = org.getResults().stream().map(this::toCSV).collect(Collectors.toList());
-        writeResults(levels, subordinates, i, strategy, results);
+        try (ChurnEventRecorder eventRecorder = eventLog.map(log -> log.newRecorder(i)).orElse(ChurnEventRecorder.NONE)) {
+            Organization org = OrganizationFactory.createCorporation(levels, subordinates, knowledgeUsabilityRate, strategy,
+                    eventRecorder);
+            org.start();
+            List<String> results = org.getResults().stream().map(this::toCSV).collect(Collectors.toList());
+            writeResults(levels, subordinates, i, strategy, results);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     private String toCSV(Result r) {
@@ -0,0 +1,47 @@
+package pl.edu.pja.event;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Collects the events of a single run in a buffer allocated up front and hands
+ * them over to the log only when the buffer wraps around or the run ends.
+ */
+class BufferedChurnEventRecorder implements ChurnEventRecorder {
+
+    private final ChurnEventLog _log;
+    private final int _run;
+    private final ByteBuffer _buffer;
+
+    BufferedChurnEventRecorder(ChurnEventLog log, int run, int capacity) {
+        _log = log;
+        _run = run;
+        _buffer = ByteBuffer.allocate(capacity * ChurnEventLog.RECORD_SIZE).order(ChurnEventLog.BYTE_ORDER);
+    }
+
+    @Override
+    public void record(int week, ChurnEventType type, int employeeId, int managerId, int level, double knowledge,
+            boolean man) {
+        if (_buffer.remaining() < ChurnEventLog.RECORD_SIZE) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        ChurnEvent.write(_buffer, _run, week, type, employeeId, managerId, level, knowledge, man);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void flush() throws IOException {
+        _buffer.flip();
+        _log.write(_buffer);
+        _buffer.clear();
+    }
+
+}
@@ -0,0 +1,95 @@
+package pl.edu.pja.event;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class ChurnEvent {
+
+    private static final ChurnEventType[] TYPES = ChurnEventType.values();
+
+    private final int _run;
+    private final int _week;
+    private final ChurnEventType _type;
+    private final int _employeeId;
+    private final int _managerId;
+    private final int _level;
+    private final double _knowledge;
+    private final boolean _man;
+
+    public ChurnEvent(int run, int week, ChurnEventType type, int employeeId, int managerId, int level,
+            double knowledge, boolean man) {
+        _run = run;
+        _week = week;
+        _type = type;
+        _employeeId = employeeId;
+        _managerId = managerId;
+        _level = level;
+        _knowledge = knowledge;
+        _man = man;
+    }
+
+    static void write(ByteBuffer buffer, int run, int week, ChurnEventType type, int employeeId, int managerId,
+            int level, double knowledge, boolean man) {
+        buffer.putInt(run)
+                .putInt(week)
+                .put((byte) type.ordinal())
+                .put((byte) (man ? 1 : 0))
+                .putShort((short) level)
+                .putInt(employeeId)
+                .putInt(managerId)
+                .putDouble(knowledge);
+    }
+
+    static ChurnEvent read(ByteBuffer buffer) throws IOException {
+        int run = buffer.getInt();
+        int week = buffer.getInt();
+        byte ordinal = buffer.get();
+        if (ordinal < 0 || ordinal >= TYPES.length)
+            throw new IOException("Unknown churn event type " + ordinal + " in run " + run + ", week " + week);
+        ChurnEventType type = TYPES[ordinal];
+        boolean man = buffer.get() != 0;
+        int level = buffer.getShort();
+        int employeeId = buffer.getInt();
+        int managerId = buffer.getInt();
+        double knowledge = buffer.getDouble();
+        return new ChurnEvent(run, week, type, employeeId, managerId, level, knowledge, man);
+    }
+
+    public int getRun() {
+        return _run;
+    }
+
+    public int getWeek() {
+        return _week;
+    }
+
+    public ChurnEventType getType() {
+        return _type;
+    }
+
+    public int getEmployeeId() {
+        return _employeeId;
+    }
+
+    public int getManagerId() {
+        return _managerId;
+    }
+
+    public int getLevel() {
+        return _level;
+    }
+
+    public double getKnowledge() {
+        return _knowledge;
+    }
+
+    public boolean isMan() {
+        return _man;
+    }
+
+    @Override
+    public String toString() {
+        return "Run: " + _run + ", week: " + _week + ", " + _type + " of employee: " + _employeeId;
+    }
+
+}
@@ -0,0 +1,60 @@
+package pl.edu.pja.event;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file collecting the churn events of all runs of a sweep. The file
+ * starts with a header (magic, version, record size) followed by fixed-size
+ * records, written in blocks of whole records by the per-run recorders.
+ */
+public class ChurnEventLog implements Closeable {
+
+    static final int MAGIC = 0x43485552;
+    static final int VERSION = 1;
+    static final int RECORD_SIZE = 28;
+    static final int HEADER_SIZE = 3 * Integer.BYTES;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private static final int RECORDER_CAPACITY = 32768;
+
+    private final FileChannel _channel;
+
+    private ChurnEventLog(FileChannel channel) {
+        _channel = channel;
+    }
+
+    public static ChurnEventLog create(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).flip();
+        writeFully(channel, header);
+        return new ChurnEventLog(channel);
+    }
+
+    public ChurnEventRecorder newRecorder(int run) {
+        return new BufferedChurnEventRecorder(this, run, RECORDER_CAPACITY);
+    }
+
+    synchronized void write(ByteBuffer records) throws IOException {
+        writeFully(_channel, records);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        _channel.close();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package pl.edu.pja.event;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streams the events of a {@link ChurnEventLog} file, reading it in large
+ * sequential blocks so that only one block is kept in memory at a time.
+ */
+public class ChurnEventReader implements Iterator<ChurnEvent>, Closeable {
+
+    private static final int BLOCK_RECORDS = 32768;
+
+    private final FileChannel _channel;
+    private final ByteBuffer _block;
+    private boolean _endOfFile;
+
+    public ChurnEventReader(Path file) throws IOException {
+        _channel = FileChannel.open(file, StandardOpenOption.READ);
+        _block = ByteBuffer.allocateDirect(BLOCK_RECORDS * ChurnEventLog.RECORD_SIZE).order(ChurnEventLog.BYTE_ORDER);
+        _block.limit(ChurnEventLog.HEADER_SIZE);
+        fill();
+        if (_block.remaining() < ChurnEventLog.HEADER_SIZE || _block.getInt() != ChurnEventLog.MAGIC
+                || _block.getInt() != ChurnEventLog.VERSION || _block.getInt() != ChurnEventLog.RECORD_SIZE) {
+            _channel.close();
+            throw new IOException("Not a churn event log: " + file);
+        }
+        _block.clear().flip();
+    }
+
+    public static Stream<ChurnEvent> stream(Path file) throws IOException {
+        ChurnEventReader reader = new ChurnEventReader(file);
+        Spliterator<ChurnEvent> events = Spliterators.spliteratorUnknownSize(reader,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(events, false).onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (_block.remaining() < ChurnEventLog.RECORD_SIZE && !_endOfFile) {
+            _block.compact();
+            try {
+                fill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (_block.hasRemaining() && _block.remaining() < ChurnEventLog.RECORD_SIZE)
+            throw new UncheckedIOException(new IOException("Churn event log is truncated: "
+                    + _block.remaining() + " bytes of an incomplete event at the end"));
+        return _block.remaining() >= ChurnEventLog.RECORD_SIZE;
+    }
+
+    @Override
+    public ChurnEvent next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        try {
+            return ChurnEvent.read(_block);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    private void fill() throws IOException {
+        // reads from the current position up to the limit and leaves the block ready for reading
+        while (_block.hasRemaining()) {
+            if (_channel.read(_block) < 0) {
+                _endOfFile = true;
+                break;
+            }
+        }
+        _block.flip();
+    }
+
+}
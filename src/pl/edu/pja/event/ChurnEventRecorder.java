@@ -0,0 +1,25 @@
+package pl.edu.pja.event;
+
+import java.io.Closeable;
+
+public interface ChurnEventRecorder extends Closeable {
+
+    int NO_MANAGER = -1;
+
+    ChurnEventRecorder NONE = new ChurnEventRecorder() {
+
+        @Override
+        public void record(int week, ChurnEventType type, int employeeId, int managerId, int level,
+                double knowledge, boolean man) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    };
+
+    void record(int week, ChurnEventType type, int employeeId, int managerId, int level, double knowledge,
+            boolean man);
+
+}
@@ -0,0 +1,10 @@
+package pl.edu.pja.event;
+
+public enum ChurnEventType {
+
+    RESIGNATION,
+    REDUCTION,
+    EXTERNAL_HIRE,
+    INTERNAL_PROMOTION
+
+}
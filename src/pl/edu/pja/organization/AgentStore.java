@@ -0,0 +1,322 @@
+package pl.edu.pja.organization;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Column-oriented agent state kept outside of the Java heap, in a memory-mapped
+ * state file. Stores that are not meant to be kept are mapped from a temporary
+ * file that is deleted right away, so neither the heap size nor the direct
+ * memory limit bounds the size of the organization; the operating system
+ * pages the columns in and out as needed. The temporary file is created in
+ * {@code java.io.tmpdir}, which should point to a disk with enough space for
+ * large organizations (about 53 bytes per agent).
+ * <p>
+ * Agents are numbered in breadth-first order, so every hierarchy level is a
+ * contiguous range of positions and the team of a manager is the contiguous
+ * range {@code [firstChild, firstChild + childCount)}. The state file starts
+ * with a header (magic, version, size, number of levels, level offsets) which
+ * is followed by the columns, in the order they are declared below.
+ */
+public final class AgentStore {
+
+    public static final int NO_MANAGER = -1;
+    public static final int MAX_AGENTS = Integer.MAX_VALUE / Double.BYTES;
+
+    private static final int MAGIC = 0x534f4349;
+    private static final int VERSION = 1;
+    private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final int _size;
+    private final int[] _levelStart;
+    private final List<ByteBuffer> _columns = new ArrayList<>();
+    private final List<MappedByteBuffer> _mappings;
+
+    private final DoubleBuffer _knowledge;
+    private final DoubleBuffer _selfPromotion;
+    private final DoubleBuffer _learningRate;
+    private final DoubleBuffer _work;
+    private final IntBuffer _employeeId;
+    private final IntBuffer _hireWeek;
+    private final IntBuffer _parent;
+    private final IntBuffer _firstChild;
+    private final IntBuffer _childCount;
+    private final ByteBuffer _sex;
+
+    private AgentStore(int[] levelStart, ColumnAllocator allocator) throws IOException {
+        _levelStart = levelStart;
+        _size = levelStart[levelStart.length - 1];
+        _knowledge = column(allocator, Double.BYTES).asDoubleBuffer();
+        _selfPromotion = column(allocator, Double.BYTES).asDoubleBuffer();
+        _learningRate = column(allocator, Double.BYTES).asDoubleBuffer();
+        _work = column(allocator, Double.BYTES).asDoubleBuffer();
+        _employeeId = column(allocator, Integer.BYTES).asIntBuffer();
+        _hireWeek = column(allocator, Integer.BYTES).asIntBuffer();
+        _parent = column(allocator, Integer.BYTES).asIntBuffer();
+        _firstChild = column(allocator, Integer.BYTES).asIntBuffer();
+        _childCount = column(allocator, Integer.BYTES).asIntBuffer();
+        _sex = column(allocator, Byte.BYTES);
+        _mappings = allocator.mappings();
+    }
+
+    public static AgentStore allocate(int[] levelSizes) {
+        int[] levelStart = toLevelStart(levelSizes);
+        try {
+            Path scratchFile = Files.createTempFile("agents", ".bin");
+            try (FileChannel channel = FileChannel.open(scratchFile, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE)) {
+                // the mappings stay valid after the channel is closed and the file is gone, and
+                // leaving them out of mappings() keeps force() from writing back to a deleted file
+                MappingAllocator scratch = new MappingAllocator(channel, MapMode.READ_WRITE, 0);
+                return new AgentStore(levelStart, scratch::allocate);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot allocate agent store", e);
+        }
+    }
+
+    public static AgentStore create(Path stateFile, int[] levelSizes) throws IOException {
+        int[] levelStart = toLevelStart(levelSizes);
+        try (FileChannel channel = FileChannel.open(stateFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(header(levelStart), 0);
+            return new AgentStore(levelStart, new MappingAllocator(channel, MapMode.READ_WRITE, headerSize(levelStart)));
+        }
+    }
+
+    public static AgentStore open(Path stateFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(stateFile, StandardOpenOption.READ)) {
+            ByteBuffer fixed = ByteBuffer.allocate(4 * Integer.BYTES).order(BYTE_ORDER);
+            readFully(channel, fixed, 0);
+            if (fixed.getInt(0) != MAGIC || fixed.getInt(Integer.BYTES) != VERSION)
+                throw new IOException("Not an agent state file: " + stateFile);
+
+            int levels = fixed.getInt(3 * Integer.BYTES);
+            ByteBuffer offsets = ByteBuffer.allocate((levels + 1) * Integer.BYTES).order(BYTE_ORDER);
+            readFully(channel, offsets, fixed.capacity());
+            offsets.rewind();
+            int[] levelStart = new int[levels + 1];
+            offsets.asIntBuffer().get(levelStart);
+            return new AgentStore(levelStart, new MappingAllocator(channel, MapMode.READ_ONLY, headerSize(levelStart)));
+        }
+    }
+
+    public void save(Path stateFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(stateFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, header(_levelStart));
+            for (ByteBuffer column : _columns) {
+                writeFully(channel, column.duplicate());
+            }
+        }
+    }
+
+    public void force() {
+        _mappings.forEach(MappedByteBuffer::force);
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public int levels() {
+        return _levelStart.length - 1;
+    }
+
+    public int levelStart(int level) {
+        return _levelStart[level];
+    }
+
+    public int levelEnd(int level) {
+        return _levelStart[level + 1];
+    }
+
+    public int levelOf(int position) {
+        int index = Arrays.binarySearch(_levelStart, position);
+        if (index >= 0) {
+            // skip over empty levels sharing the same offset
+            while (_levelStart[index + 1] == position)
+                index++;
+            return index;
+        }
+        return -index - 2;
+    }
+
+    public void setAgent(int position, int employeeId, int hireWeek, double knowledge, double selfPromotion,
+            double learningRate, boolean sex) {
+        _employeeId.put(position, employeeId);
+        _hireWeek.put(position, hireWeek);
+        _knowledge.put(position, knowledge);
+        _selfPromotion.put(position, selfPromotion);
+        _learningRate.put(position, learningRate);
+        _sex.put(position, (byte) (sex ? 1 : 0));
+    }
+
+    public void copyAgent(int from, int to) {
+        setAgent(to, employeeId(from), hireWeek(from), knowledge(from), selfPromotion(from), learningRate(from),
+                sex(from));
+    }
+
+    public void link(int position, int parent, int firstChild, int childCount) {
+        _parent.put(position, parent);
+        _firstChild.put(position, firstChild);
+        _childCount.put(position, childCount);
+    }
+
+    public int employeeId(int position) {
+        return _employeeId.get(position);
+    }
+
+    public void setEmployeeId(int position, int employeeId) {
+        _employeeId.put(position, employeeId);
+    }
+
+    public int hireWeek(int position) {
+        return _hireWeek.get(position);
+    }
+
+    public double knowledge(int position) {
+        return _knowledge.get(position);
+    }
+
+    public void setKnowledge(int position, double knowledge) {
+        _knowledge.put(position, knowledge);
+    }
+
+    public double selfPromotion(int position) {
+        return _selfPromotion.get(position);
+    }
+
+    public double learningRate(int position) {
+        return _learningRate.get(position);
+    }
+
+    public boolean sex(int position) {
+        return _sex.get(position) != 0;
+    }
+
+    public double work(int position) {
+        return _work.get(position);
+    }
+
+    public void setWork(int position, double work) {
+        _work.put(position, work);
+    }
+
+    public int parent(int position) {
+        return _parent.get(position);
+    }
+
+    public int firstChild(int position) {
+        return _firstChild.get(position);
+    }
+
+    public int childCount(int position) {
+        return _childCount.get(position);
+    }
+
+    private ByteBuffer column(ColumnAllocator allocator, int bytesPerAgent) throws IOException {
+        ByteBuffer column = allocator.allocate(_size, bytesPerAgent);
+        _columns.add(column);
+        return column;
+    }
+
+    private static int[] toLevelStart(int[] levelSizes) {
+        if (levelSizes.length == 0)
+            throw new IllegalArgumentException("Organization must have at least one level!");
+
+        int[] levelStart = new int[levelSizes.length + 1];
+        long size = 0;
+        for (int level = 0; level < levelSizes.length; level++) {
+            levelStart[level] = (int) size;
+            size += levelSizes[level];
+            if (levelSizes[level] < 0 || size > MAX_AGENTS)
+                throw new IllegalArgumentException("Organization cannot have more than " + MAX_AGENTS + " agents");
+        }
+        levelStart[levelSizes.length] = (int) size;
+        return levelStart;
+    }
+
+    private static ByteBuffer header(int[] levelStart) {
+        ByteBuffer header = ByteBuffer.allocate(headerSize(levelStart)).order(BYTE_ORDER);
+        header.putInt(MAGIC).putInt(VERSION).putInt(levelStart[levelStart.length - 1]).putInt(levelStart.length - 1);
+        for (int offset : levelStart) {
+            header.putInt(offset);
+        }
+        header.rewind();
+        return header;
+    }
+
+    private static int headerSize(int[] levelStart) {
+        int size = (4 + levelStart.length) * Integer.BYTES;
+        // keep the double columns 8-byte aligned
+        return (size + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of agent state file");
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private interface ColumnAllocator {
+
+        ByteBuffer allocate(int size, int bytesPerAgent) throws IOException;
+
+        default List<MappedByteBuffer> mappings() {
+            return Collections.emptyList();
+        }
+
+    }
+
+    private static final class MappingAllocator implements ColumnAllocator {
+
+        private final FileChannel _channel;
+        private final MapMode _mode;
+        private final List<MappedByteBuffer> _mappings = new ArrayList<>();
+        private long _offset;
+
+        MappingAllocator(FileChannel channel, MapMode mode, long offset) {
+            _channel = channel;
+            _mode = mode;
+            _offset = offset;
+        }
+
+        @Override
+        public ByteBuffer allocate(int size, int bytesPerAgent) throws IOException {
+            long length = (long) size * bytesPerAgent;
+            MappedByteBuffer column = _channel.map(_mode, _offset, length);
+            _mappings.add(column);
+            _offset += length;
+            return column.order(BYTE_ORDER);
+        }
+
+        @Override
+        public List<MappedByteBuffer> mappings() {
+            return _mappings;
+        }
+
+    }
+
+}
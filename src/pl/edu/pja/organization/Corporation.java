@@ -5,21 +5,25 @@ import static java.util.Collections.emptySet;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.groupingByConcurrent;
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toSet;
+import static pl.edu.pja.event.ChurnEventType.EXTERNAL_HIRE;
+import static pl.edu.pja.event.ChurnEventType.INTERNAL_PROMOTION;
+import static pl.edu.pja.event.ChurnEventType.REDUCTION;
+import static pl.edu.pja.event.ChurnEventType.RESIGNATION;
+import static pl.edu.pja.organization.Hierarchy.NO_SLOT;
 
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
+import pl.edu.pja.event.ChurnEventRecorder;
+import pl.edu.pja.event.ChurnEventType;
 import pl.edu.pja.strategy.SimulationStrategy;
 import pl.edu.pja.util.PromotionUtil;
 
@@ -31,81 +35,77 @@ public class Corporation extends Organization {
     private static final int START_WEEK = 0;
     private static final Boolean EXTERNAL_HIRES = Boolean.FALSE;
     private static final Boolean INTERNAL_PROMOTIONS = Boolean.TRUE;
+    private static final int CEO = 0;
 
     private final EmployeeFactory _employeeFactory;
     private final PromotionUtil _promotionUtil;
     private final double _knowledgeUsabilityRate;
     private final double _orgSize;
+    private final double[] _subtreeSizes;
+
+    private final Hierarchy _hierarchy;
+    private final transient ChurnEventRecorder _eventRecorder;
 
-    private Map<Employee, Set<Employee>> _subordinates = new ConcurrentHashMap<>();
-    private Map<Employee, Employee> _managers = new ConcurrentHashMap<>();
     private List<Result> _results = emptyList();
-    private Employee _ceo;
 
     public Corporation(long seed, int levels, int subordinates, double knowledgeUsabilityRate, SimulationStrategy strategy) {
+        this(seed, levels, subordinates, knowledgeUsabilityRate, strategy, ChurnEventRecorder.NONE);
+    }
+
+    public Corporation(long seed, int levels, int subordinates, double knowledgeUsabilityRate, SimulationStrategy strategy,
+            ChurnEventRecorder eventRecorder) {
         super(seed);
+        _eventRecorder = requireNonNull(eventRecorder);
         _knowledgeUsabilityRate = knowledgeUsabilityRate;
         _employeeFactory = new EmployeeFactory(seed, INITIAL_EMPLOYEE_ID, strategy);
         _promotionUtil = new PromotionUtil(seed);
-        _orgSize = (Math.pow(subordinates, levels) - 1) / (subordinates - 1);
-        initialize(levels, subordinates);
-    }
-
-    private void initialize(int levels, int subordinatesCount) {
-        _ceo = _employeeFactory.createEmployee(this, START_WEEK, true);
-        Set<Employee> topLevelManagers = initializeLevel(_ceo, subordinatesCount, true);
-        _subordinates.put(_ceo, topLevelManagers);
-        topLevelManagers.stream().forEach(manager -> initializeSubLevels(manager, levels - 1, subordinatesCount));
-    }
-
-    private Set<Employee> initializeLevel(Employee manager, int subordinatesCount, boolean managersLevel) {
-        Set<Employee> employees = generateEmployees(subordinatesCount, managersLevel);
-        initializeTeam(manager, employees);
-        return employees;
-    }
-
-    private Set<Employee> generateEmployees(int howMany, boolean isManager) {
-        return IntStream.range(0, howMany).boxed().map(i -> _employeeFactory.createEmployee(this, START_WEEK, true))
-                .collect(Collectors.toSet());
+        _subtreeSizes = computeSubtreeSizes(levels, subordinates);
+        _hierarchy = new Hierarchy(levels, subordinates);
+        _orgSize = _hierarchy.size();
+        initialize();
+    }
+
+    private static double[] computeSubtreeSizes(int levels, int subordinates) {
+        // the tree has levels + 1 hierarchy levels, the CEO being at level 0
+        double[] subtreeSizes = new double[levels + 1];
+        subtreeSizes[levels] = 1;
+        for (int level = levels - 1; level >= 0; level--) {
+            subtreeSizes[level] = 1 + subordinates * subtreeSizes[level + 1];
+        }
+        return subtreeSizes;
     }
 
-    private void initializeTeam(Employee manager, Set<Employee> employees) {
-        requireNonNull(manager);
-        requireNonNull(employees);
-        employees.stream().forEach(emp -> {
-            Set<Employee> coworkers = new HashSet<>(employees);
-            coworkers.remove(emp);
-            _managers.put(emp, manager);
-        });
+    private boolean shouldSplit(int level) {
+        return level < _subtreeSizes.length && _subtreeSizes[level] >= SPLIT_THRESHOLD;
     }
 
-    private void initializeSubLevels(Employee manager, int level, int subordinatesCount) {
-        // Initialize unless everything is already initialized
-        if (level == 0)
-            return;
-        Set<Employee> directReports = initializeLevel(manager, subordinatesCount, level > 1);
-        _subordinates.put(manager, directReports);
-        directReports.stream().forEach(report -> initializeSubLevels(report, level - 1, subordinatesCount));
+    private void initialize() {
+        IntStream.range(0, _hierarchy.size())
+                .forEach(slot -> _hierarchy.place(slot, _employeeFactory.createEmployee(this, START_WEEK, true)));
     }
 
     @Override
     public Set<Employee> getCoworkers(Employee emp) {
-        return getManager(emp)
-                .map(this::getSubordinates)
-                .map(team -> team.stream()
-                        .filter(e -> !e.equals(emp))
-                        .collect(toSet()))
-                .orElse(emptySet());
+        int slot = _hierarchy.slotOf(emp);
+        return slot == NO_SLOT ? emptySet() : _hierarchy.coworkers(slot);
     }
 
     @Override
     public Set<Employee> getSubordinates(Employee emp) {
-        return _subordinates.getOrDefault(emp, emptySet());
+        int slot = _hierarchy.slotOf(emp);
+        return slot == NO_SLOT ? emptySet() : _hierarchy.team(slot);
     }
 
     @Override
     public Optional<Employee> getManager(Employee emp) {
-        return Optional.ofNullable(_managers.get(emp));
+        int slot = _hierarchy.slotOf(emp);
+        if (slot == NO_SLOT || _hierarchy.parent(slot) == NO_SLOT)
+            return Optional.empty();
+        return Optional.of(_hierarchy.get(_hierarchy.parent(slot)));
+    }
+
+    private Employee getCeo() {
+        return _hierarchy.get(CEO);
     }
 
     @Override
@@ -124,26 +124,54 @@ public class Corporation extends Organization {
         if (isEndOfTheQuarter(week)) {
             reduceEmployees(week);
         }
-        double workPerformed = _ceo.getRealWorkPerformed();
+        double workPerformed = aggregateWork(ConcurrentHashMap.newKeySet());
         double reducedWorkPerformed = workPerformed / _orgSize;
 
         return new Result(week, workPerformed, reducedWorkPerformed);
     }
 
     private void updateKnowledge(long step) {
-        _ceo.updateKnowledge(step);
-        updateSubordinatesKnowledge(_ceo, step);
+        getCeo().updateKnowledge(step);
+        if (shouldSplit(1)) {
+            new KnowledgeUpdateTask(getCeo(), 0, step).invoke();
+        } else {
+            updateTeamKnowledge(getCeo(), step);
+        }
     }
 
-    private void updateSubordinatesKnowledge(Employee manager, long step) {
-        getSubordinates(manager).stream().forEach(emp -> {
-            emp.updateKnowledge(step);
-            updateSubordinatesKnowledge(emp, step);
-        });
+    private void updateTeamKnowledge(Employee manager, long step) {
+        Set<Employee> team = getSubordinates(manager);
+        team.stream().forEach(emp -> emp.updateKnowledge(step));
+        team.stream().forEach(emp -> updateTeamKnowledge(emp, step));
+    }
+
+    private double aggregateWork(Set<Employee> badManagers) {
+        if (shouldSplit(1))
+            return new WorkAggregationTask(getCeo(), 0, badManagers).invoke().doubleValue();
+        return aggregateWork(getCeo(), badManagers);
+    }
+
+    private double aggregateWork(Employee emp, Set<Employee> badManagers) {
+        Set<Employee> team = getSubordinates(emp);
+        if (team.isEmpty())
+            return emp.getKnowledge() * _knowledgeUsabilityRate;
+
+        double subordinatesWork = team.stream().mapToDouble(sub -> aggregateWork(sub, badManagers)).reduce(0d, Double::sum);
+        return managerWork(emp, subordinatesWork, badManagers);
+    }
+
+    private double managerWork(Employee manager, double subordinatesWork, Set<Employee> badManagers) {
+        double work = manager.getKnowledge() * _knowledgeUsabilityRate * subordinatesWork;
+        if (work < 0d)
+            badManagers.add(manager);
+        return work;
     }
 
     private void performResignations(long step) {
-        List<Employee> quitingTopPerformers = findQuitingTopPerformers();
+        Set<Employee> badManagers = ConcurrentHashMap.newKeySet();
+        aggregateWork(badManagers);
+        List<Employee> quitingTopPerformers = findQuitingTopPerformers(badManagers);
+        quitingTopPerformers.stream().forEach(emp -> recordEvent(step, RESIGNATION, emp));
 
         ConcurrentMap<Boolean, List<Employee>> quitingEmployeesByPromotionStatus = quitingTopPerformers.stream()
                 .collect(groupingByConcurrent(this::shouldPromoteInternally));
@@ -151,26 +179,14 @@ public class Corporation extends Organization {
         replaceEmployees(step, quitingEmployeesByPromotionStatus);
     }
 
-    private List<Employee> findQuitingTopPerformers() {
-        List<Employee> badManagers = findBadManagers();
-        return badManagers.stream()
+    private List<Employee> findQuitingTopPerformers(Set<Employee> badManagers) {
+        return _hierarchy.managers()
+                .filter(badManagers::contains)
                 .map(this::topPerformerPossiblyResigns)
                 .filter(Optional::isPresent).map(Optional::get)
                 .collect(toList());
     }
 
-    private List<Employee> findBadManagers() {
-        Set<Employee> allManagers = getAllManagers();
-        return allManagers.stream()
-                .filter(manager -> manager.getRealWorkPerformed() < 0d)
-                .collect(toList());
-    }
-
-    private Set<Employee> getAllManagers() {
-        Set<Employee> allManagers = new HashSet<>(_managers.values());
-        return allManagers;
-    }
-
     private Optional<Employee> topPerformerPossiblyResigns(Employee manager) {
         Optional<Employee> maybeTopPerformer = findTopPerformer(manager);
         return maybeTopPerformer.filter(tp -> _promotionUtil.topPerformerResignes());
@@ -187,13 +203,7 @@ public class Corporation extends Organization {
     }
 
     private int getHierarchyLevel(Employee emp) {
-        int level = 0;
-        Employee current = emp;
-        while (getManager(current).isPresent()) {
-            level++;
-            current = getManager(current).get();
-        }
-        return level;
+        return _hierarchy.level(_hierarchy.slotOf(emp));
     }
     
     private void replaceEmployees(long step, ConcurrentMap<Boolean, List<Employee>> employeesByReplacementStatus) {
@@ -204,36 +214,18 @@ public class Corporation extends Organization {
     }
 
     private Consumer<Employee> hireReplacement(long step) {
-        return emp -> hireReplacement(emp, hiringWeekFor(step));
+        return emp -> hireReplacement(emp, step);
     }
 
-    private void hireReplacement(Employee emp, int hireWeek) {
-        Employee replacement = _employeeFactory.createEmployee(this, hireWeek, emp.isManager());
+    private void hireReplacement(Employee emp, long step) {
+        Employee replacement = _employeeFactory.createEmployee(this, hiringWeekFor(step), emp.isManager());
         replaceEmployee(emp, replacement);
+        recordEvent(step, EXTERNAL_HIRE, replacement);
     }
 
     private void replaceEmployee(Employee emp, Employee replacement) {
-        if (emp.isManager()) {
-            // set suboordinates
-            Set<Employee> subordinates = getSubordinates(emp).stream().filter(s -> !s.equals(replacement))
-                    .collect(toSet());
-            _subordinates.put(replacement, subordinates);
-            // replace manager for subordinates
-            subordinates.stream().forEach(s -> _managers.put(s, replacement));
-            _subordinates.remove(emp);
-        }
-
-        Optional<Employee> maybeManager = getManager(emp);
-        if (maybeManager.isPresent()) {
-            _managers.put(replacement, maybeManager.get());
-            replaceSubordinates(maybeManager.get(), emp, replacement);
-        }
-    }
-
-    private void replaceSubordinates(Employee manager, Employee quitingEmployee, Employee replacement) {
-        Stream<Employee> remainingTeam = getSubordinates(manager).stream().filter(e -> !e.equals(quitingEmployee));
-        Set<Employee> updatedTeam = Stream.concat(remainingTeam, Stream.of(replacement)).collect(toSet());
-        _subordinates.put(manager, updatedTeam);
+        // the replacement takes over the slot, so the manager and the team come with it
+        _hierarchy.replace(emp, replacement);
     }
 
     private int hiringWeekFor(long step) {
@@ -241,18 +233,19 @@ public class Corporation extends Organization {
     }
 
     private Consumer<Employee> promoteInternally(long step) {
-        return emp -> promoteReplacementInternally(emp, hiringWeekFor(step));
+        return emp -> promoteReplacementInternally(emp, step);
     }
 
-    private void promoteReplacementInternally(Employee emp, int hiringWeek) {
+    private void promoteReplacementInternally(Employee emp, long step) {
         Employee promotionCandidate = peekEmployeeForPromotion(emp);
         // Hire replacement for internally promoted candidate
         // It's not likely that anybody will want to make drastic changes to the
         // structure
-        replaceEmployee(promotionCandidate, _employeeFactory.createEmployee(this, hiringWeek, promotionCandidate.isManager()));
+        hireReplacement(promotionCandidate, step);
         // update knowledge - not all of what you know could be applied one level above
         promotionCandidate.setKnowledge(promotionCandidate.getKnowledge() * _promotionUtil.getLevelUpKnowledgeApplicability());
         replaceEmployee(emp, promotionCandidate);
+        recordEvent(step, INTERNAL_PROMOTION, promotionCandidate);
     }
 
     private Employee peekEmployeeForPromotion(Employee mgr) {
@@ -278,20 +271,32 @@ public class Corporation extends Organization {
                 (a.getVirtualWorkPerformed(averageTeamMemberWork) - b.getVirtualWorkPerformed(averageTeamMemberWork)));
     }
 
+    private void recordEvent(long step, ChurnEventType type, Employee emp) {
+        int slot = _hierarchy.slotOf(emp);
+        int manager = _hierarchy.parent(slot);
+        int managerId = manager == NO_SLOT ? ChurnEventRecorder.NO_MANAGER : _hierarchy.get(manager).getEmployeeId();
+        _eventRecorder.record((int) step, type, emp.getEmployeeId(), managerId, _hierarchy.level(slot),
+                emp.getKnowledge(), emp.isMan());
+    }
+
     private boolean isEndOfTheQuarter(long step) {
         return step % 13 == 0;
     }
 
     private void reduceEmployees(long step) {
-        Set<Employee> allManagers = getAllManagers();
-        ConcurrentMap<Boolean, List<Employee>> employeesForReplacement = allManagers.stream()
+        ConcurrentMap<Boolean, List<Employee>> employeesForReplacement = _hierarchy.managers()
                 .map(this::peekEmployeeForReduction)
                 .filter(Optional::isPresent)
                 .map(Optional::get)
-                .collect(groupingByConcurrent(this::shouldPromoteInternally));
+                .collect(groupingByConcurrent(emp -> reduceEmployee(emp, step)));
         replaceEmployees(step, employeesForReplacement);
     }
 
+    private Boolean reduceEmployee(Employee emp, long step) {
+        recordEvent(step, REDUCTION, emp);
+        return shouldPromoteInternally(emp);
+    }
+
     private Optional<Employee> peekEmployeeForReduction(Employee manager) {
         if (_promotionUtil.shouldReducePersonel()) {
             if (_promotionUtil.shouldReduceSelfPromoter())
@@ -305,6 +310,78 @@ public class Corporation extends Organization {
         return Optional.empty();
     }
 
+    /**
+     * Updates the knowledge of the whole team first and then descends into the
+     * subtrees of its members. Agents only learn from their coworkers and their
+     * manager, so the subtrees are independent of each other and the outcome is
+     * the same as for a sequential depth-first traversal. Subtrees too small to
+     * be forked are updated by {@link Corporation#updateTeamKnowledge}.
+     */
+    private final class KnowledgeUpdateTask extends RecursiveAction {
+
+        private static final long serialVersionUID = -2409826946591337264L;
+
+        private final Employee _manager;
+        private final int _level;
+        private final long _step;
+
+        KnowledgeUpdateTask(Employee manager, int level, long step) {
+            _manager = manager;
+            _level = level;
+            _step = step;
+        }
+
+        @Override
+        protected void compute() {
+            Set<Employee> team = getSubordinates(_manager);
+            team.stream().forEach(emp -> emp.updateKnowledge(_step));
+            if (shouldSplit(_level + 1)) {
+                invokeAll(team.stream()
+                        .map(emp -> new KnowledgeUpdateTask(emp, _level + 1, _step))
+                        .collect(toList()));
+            } else {
+                team.stream().forEach(emp -> updateTeamKnowledge(emp, _step));
+            }
+        }
+
+    }
+
+    /**
+     * Computes the work performed by an agent and its whole subtree, the same
+     * way {@link Worker#getRealWorkPerformed()} does, collecting the managers
+     * whose work is negative on the way. Subtrees too small to be forked are
+     * aggregated by {@link Corporation#aggregateWork(Employee, Set)}.
+     */
+    private final class WorkAggregationTask extends RecursiveTask<Double> {
+
+        private static final long serialVersionUID = 5738964725342937795L;
+
+        private final Employee _emp;
+        private final int _level;
+        private final Set<Employee> _badManagers;
+
+        WorkAggregationTask(Employee emp, int level, Set<Employee> badManagers) {
+            _emp = emp;
+            _level = level;
+            _badManagers = badManagers;
+        }
+
+        @Override
+        protected Double compute() {
+            if (!shouldSplit(_level + 1))
+                return Double.valueOf(aggregateWork(_emp, _badManagers));
+
+            List<WorkAggregationTask> subtrees = getSubordinates(_emp).stream()
+                    .map(emp -> new WorkAggregationTask(emp, _level + 1, _badManagers))
+                    .collect(toList());
+            double subordinatesWork = invokeAll(subtrees).stream()
+                    .mapToDouble(WorkAggregationTask::join)
+                    .reduce(0d, Double::sum);
+            return Double.valueOf(managerWork(_emp, subordinatesWork, _badManagers));
+        }
+
+    }
+
     @Override
     public double getKnowledgeUsabilityRate() {
         return _knowledgeUsabilityRate;
@@ -14,4 +14,8 @@ public interface Employee {
 
     void setKnowledge(double knowledge);
 
+    int getEmployeeId();
+
+    boolean isMan();
+
 }
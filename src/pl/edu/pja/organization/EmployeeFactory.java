@@ -36,16 +36,25 @@ public class EmployeeFactory {
     }
 
     public Employee createEmployee(Organization org, int hireWeek, boolean isManager, double initialKnowledge) {
-        double selfPromotion = getSelfPromotionRate(isManager);
+        boolean sex = getAgentSex(isManager);
+        double selfPromotion = getSelfPromotionGenerator(sex).nextDouble();
         double learningRate = _learningRateGenerator.nextDouble();
 
-        return new Worker(org, _employeeId.getAndIncrement(), hireWeek, initialKnowledge, selfPromotion, learningRate);
+        return new Worker(org, _employeeId.getAndIncrement(), hireWeek, initialKnowledge, selfPromotion, learningRate,
+                sex);
+    }
+
+    public void createAgent(AgentStore store, int position, int hireWeek, boolean isManager) {
+        createAgent(store, position, hireWeek, isManager, _employeeId.getAndIncrement());
     }
 
-    private double getSelfPromotionRate(boolean isManager) {
+    public void createAgent(AgentStore store, int position, int hireWeek, boolean isManager, int employeeId) {
+        double initialKnowledge = _knowledgeGenerator.nextDouble();
         boolean sex = getAgentSex(isManager);
-        Uniform selfPromotionGenerator = getSelfPromotionGenerator(sex);
-        return selfPromotionGenerator.nextDouble();
+        double selfPromotion = getSelfPromotionGenerator(sex).nextDouble();
+        double learningRate = _learningRateGenerator.nextDouble();
+
+        store.setAgent(position, employeeId, hireWeek, initialKnowledge, selfPromotion, learningRate, sex);
     }
 
     private boolean getAgentSex(boolean isManager) {
@@ -0,0 +1,169 @@
+package pl.edu.pja.organization;
+
+import static java.util.Collections.emptySet;
+
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Fixed shape of the organization made of slots numbered in breadth-first
+ * order, so that every team is a contiguous range of slots. Employees come and
+ * go, but the slots stay where they are: placing an employee into a slot is
+ * all it takes to take over the manager and the team of its previous holder.
+ */
+final class Hierarchy {
+
+    static final int NO_SLOT = -1;
+
+    private final Employee[] _slots;
+    private final int[] _parent;
+    private final int[] _firstChild;
+    private final int[] _level;
+    private final int _subordinatesCount;
+    private final Map<Employee, Integer> _slotOf = new HashMap<>();
+
+    Hierarchy(int levels, int subordinatesCount) {
+        int size = 0;
+        int levelSize = 1;
+        int[] levelStart = new int[levels + 2];
+        for (int level = 0; level <= levels; level++) {
+            levelStart[level] = size;
+            size += levelSize;
+            levelSize *= subordinatesCount;
+        }
+        levelStart[levels + 1] = size;
+
+        _subordinatesCount = subordinatesCount;
+        _slots = new Employee[size];
+        _parent = new int[size];
+        _firstChild = new int[size];
+        _level = new int[size];
+        for (int level = 0; level <= levels; level++) {
+            for (int slot = levelStart[level]; slot < levelStart[level + 1]; slot++) {
+                int index = slot - levelStart[level];
+                _level[slot] = level;
+                _parent[slot] = level == 0 ? NO_SLOT : levelStart[level - 1] + index / subordinatesCount;
+                _firstChild[slot] = level == levels ? size : levelStart[level + 1] + index * subordinatesCount;
+            }
+        }
+    }
+
+    int size() {
+        return _slots.length;
+    }
+
+    Employee get(int slot) {
+        return _slots[slot];
+    }
+
+    int slotOf(Employee emp) {
+        Integer slot = _slotOf.get(emp);
+        return slot == null ? NO_SLOT : slot.intValue();
+    }
+
+    int parent(int slot) {
+        return _parent[slot];
+    }
+
+    int level(int slot) {
+        return _level[slot];
+    }
+
+    boolean isManager(int slot) {
+        return childCount(slot) > 0;
+    }
+
+    void place(int slot, Employee emp) {
+        Employee previous = _slots[slot];
+        if (previous != null)
+            _slotOf.remove(previous);
+        _slots[slot] = emp;
+        _slotOf.put(emp, Integer.valueOf(slot));
+    }
+
+    void replace(Employee emp, Employee replacement) {
+        int slot = slotOf(emp);
+        if (slot == NO_SLOT)
+            throw new IllegalArgumentException("Employee is not part of the organization: " + emp);
+        place(slot, replacement);
+    }
+
+    Set<Employee> team(int slot) {
+        return isManager(slot) ? new Team(_firstChild[slot], childCount(slot), NO_SLOT) : emptySet();
+    }
+
+    Set<Employee> coworkers(int slot) {
+        int manager = _parent[slot];
+        return manager == NO_SLOT ? emptySet() : new Team(_firstChild[manager], childCount(manager), slot);
+    }
+
+    Stream<Employee> managers() {
+        return IntStream.range(0, _slots.length).filter(this::isManager).mapToObj(this::get);
+    }
+
+    private int childCount(int slot) {
+        return _firstChild[slot] < _slots.length ? _subordinatesCount : 0;
+    }
+
+    /**
+     * Live view of the employees holding a range of slots.
+     */
+    private final class Team extends AbstractSet<Employee> {
+
+        private final int _from;
+        private final int _size;
+        private final int _excluded;
+
+        Team(int from, int size, int excluded) {
+            _from = from;
+            _size = size;
+            _excluded = excluded;
+        }
+
+        @Override
+        public Iterator<Employee> iterator() {
+            return new Iterator<Employee>() {
+
+                private int _next = skipExcluded(_from);
+
+                @Override
+                public boolean hasNext() {
+                    return _next < _from + _size;
+                }
+
+                @Override
+                public Employee next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    Employee emp = _slots[_next];
+                    _next = skipExcluded(_next + 1);
+                    return emp;
+                }
+
+            };
+        }
+
+        private int skipExcluded(int slot) {
+            return slot == _excluded ? slot + 1 : slot;
+        }
+
+        @Override
+        public int size() {
+            return _excluded == NO_SLOT ? _size : _size - 1;
+        }
+
+        @Override
+        public boolean contains(Object obj) {
+            int slot = obj instanceof Employee ? slotOf((Employee) obj) : NO_SLOT;
+            return slot >= _from && slot < _from + _size && slot != _excluded;
+        }
+
+    }
+
+}
@@ -0,0 +1,83 @@
+package pl.edu.pja.organization;
+
+class OffHeapAgent implements Employee {
+
+    private final OffHeapCorporation _organization;
+    private final int _position;
+
+    OffHeapAgent(OffHeapCorporation organization, int position) {
+        _organization = organization;
+        _position = position;
+    }
+
+    OffHeapCorporation getOrganization() {
+        return _organization;
+    }
+
+    int getPosition() {
+        return _position;
+    }
+
+    @Override
+    public void updateKnowledge(long step) {
+        _organization.updateKnowledge(_position, step);
+    }
+
+    @Override
+    public double getRealWorkPerformed() {
+        return _organization.refreshWork(_position);
+    }
+
+    @Override
+    public double getVirtualWorkPerformed(double teamAverage) {
+        _organization.refreshWork(_position);
+        return _organization.virtualWork(_position, teamAverage);
+    }
+
+    @Override
+    public double getKnowledge() {
+        return _organization.getStore().knowledge(_position);
+    }
+
+    @Override
+    public boolean isManager() {
+        return _organization.isManager(_position);
+    }
+
+    @Override
+    public void setKnowledge(double knowledge) {
+        _organization.getStore().setKnowledge(_position, knowledge);
+    }
+
+    @Override
+    public int getEmployeeId() {
+        return _organization.getStore().employeeId(_position);
+    }
+
+    @Override
+    public boolean isMan() {
+        return _organization.getStore().sex(_position);
+    }
+
+    @Override
+    public int hashCode() {
+        return _position;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof OffHeapAgent) {
+            OffHeapAgent other = (OffHeapAgent) obj;
+            return _organization == other._organization && _position == other._position;
+        }
+
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        AgentStore store = _organization.getStore();
+        return "Employee: " + store.employeeId(_position) + ", hire week: " + store.hireWeek(_position);
+    }
+
+}
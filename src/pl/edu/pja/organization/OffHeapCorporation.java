@@ -0,0 +1,483 @@
+package pl.edu.pja.organization;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static pl.edu.pja.organization.AgentStore.NO_MANAGER;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import pl.edu.pja.strategy.SimulationStrategy;
+import pl.edu.pja.util.PromotionUtil;
+
+/**
+ * Same model as {@link Corporation}, but the agents and the hierarchy live in
+ * an {@link AgentStore} instead of {@link Worker} objects, and every phase of
+ * the week streams through the store level by level.
+ */
+public class OffHeapCorporation extends Organization {
+
+    private static final long serialVersionUID = -5415880871468514436L;
+
+    private static final int INITIAL_EMPLOYEE_ID = 1000;
+    private static final int START_WEEK = 0;
+    private static final int CEO = 0;
+
+    private final EmployeeFactory _employeeFactory;
+    private final PromotionUtil _promotionUtil;
+    private final double _knowledgeUsabilityRate;
+    private final double _orgSize;
+    private final transient AgentStore _store;
+
+    private List<Result> _results = emptyList();
+
+    public OffHeapCorporation(long seed, int levels, int subordinates, double knowledgeUsabilityRate,
+            SimulationStrategy strategy) {
+        this(seed, linkUniformHierarchy(AgentStore.allocate(uniformLevelSizes(levels, subordinates)), subordinates),
+                knowledgeUsabilityRate, strategy);
+    }
+
+    public OffHeapCorporation(long seed, int levels, int subordinates, double knowledgeUsabilityRate,
+            SimulationStrategy strategy, Path stateFile) throws IOException {
+        this(seed, linkUniformHierarchy(AgentStore.create(stateFile, uniformLevelSizes(levels, subordinates)), subordinates),
+                knowledgeUsabilityRate, strategy);
+    }
+
+    /**
+     * Creates the organization on top of an org chart, i.e. a freshly loaded,
+     * writable store with only the hierarchy and the employee ids in place, as
+     * produced by {@link OrgChartLoader}. The attributes of every agent are
+     * drawn anew, so this cannot resume a persisted state.
+     */
+    OffHeapCorporation(long seed, AgentStore orgChart, double knowledgeUsabilityRate,
+            SimulationStrategy strategy) {
+        super(seed);
+        _store = orgChart;
+        _knowledgeUsabilityRate = knowledgeUsabilityRate;
+        _employeeFactory = new EmployeeFactory(seed, nextEmployeeId(orgChart), strategy);
+        _promotionUtil = new PromotionUtil(seed);
+        _orgSize = orgChart.size();
+        initialize();
+    }
+
+    private static int[] uniformLevelSizes(int levels, int subordinates) {
+        // the CEO plus "levels" levels below, the same shape Corporation builds
+        int[] levelSizes = new int[levels + 1];
+        long levelSize = 1;
+        for (int level = 0; level <= levels; level++) {
+            if (levelSize > AgentStore.MAX_AGENTS)
+                throw new IllegalArgumentException("Organization cannot have more than " + AgentStore.MAX_AGENTS + " agents");
+            levelSizes[level] = (int) levelSize;
+            levelSize *= subordinates;
+        }
+        return levelSizes;
+    }
+
+    private static AgentStore linkUniformHierarchy(AgentStore store, int subordinates) {
+        int lastLevel = store.levels() - 1;
+        for (int level = 0; level <= lastLevel; level++) {
+            int start = store.levelStart(level);
+            for (int position = start; position < store.levelEnd(level); position++) {
+                int parent = level == 0 ? NO_MANAGER : store.levelStart(level - 1) + (position - start) / subordinates;
+                if (level == lastLevel) {
+                    store.link(position, parent, store.size(), 0);
+                } else {
+                    int firstChild = store.levelEnd(level) + (position - start) * subordinates;
+                    store.link(position, parent, firstChild, subordinates);
+                }
+                store.setEmployeeId(position, INITIAL_EMPLOYEE_ID + position);
+            }
+        }
+        return store;
+    }
+
+    private static int nextEmployeeId(AgentStore orgChart) {
+        int maxEmployeeId = INITIAL_EMPLOYEE_ID - 1;
+        for (int position = 0; position < orgChart.size(); position++) {
+            maxEmployeeId = Math.max(maxEmployeeId, orgChart.employeeId(position));
+        }
+        return maxEmployeeId + 1;
+    }
+
+    private void initialize() {
+        for (int position = 0; position < _store.size(); position++) {
+            _employeeFactory.createAgent(_store, position, START_WEEK, true, _store.employeeId(position));
+        }
+    }
+
+    public Employee getCeo() {
+        return new OffHeapAgent(this, CEO);
+    }
+
+    @Override
+    public Set<Employee> getCoworkers(Employee emp) {
+        return positionOf(emp)
+                .filter(position -> _store.parent(position) != NO_MANAGER)
+                .map(position -> team(_store.parent(position))
+                        .filter(coworker -> coworker != position)
+                        .mapToObj(this::agentAt)
+                        .collect(toSet()))
+                .orElse(emptySet());
+    }
+
+    @Override
+    public Set<Employee> getSubordinates(Employee emp) {
+        return positionOf(emp)
+                .map(position -> team(position).mapToObj(this::agentAt).collect(toSet()))
+                .orElse(emptySet());
+    }
+
+    @Override
+    public Optional<Employee> getManager(Employee emp) {
+        return positionOf(emp)
+                .map(_store::parent)
+                .filter(manager -> manager != NO_MANAGER)
+                .map(this::agentAt);
+    }
+
+    private Optional<Integer> positionOf(Employee emp) {
+        if (emp instanceof OffHeapAgent && ((OffHeapAgent) emp).getOrganization() == this)
+            return Optional.of(((OffHeapAgent) emp).getPosition());
+        return Optional.empty();
+    }
+
+    private Employee agentAt(int position) {
+        return new OffHeapAgent(this, position);
+    }
+
+    private IntStream team(int manager) {
+        int firstChild = _store.firstChild(manager);
+        return IntStream.range(firstChild, firstChild + _store.childCount(manager));
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        int weeksPerYear = 52;
+        int simulationLengthInYears  = 16;
+        _results = IntStream.rangeClosed(1, (weeksPerYear * simulationLengthInYears) + 1).boxed()
+                .map(this::computeWeeklyResults)
+                .collect(toList());
+        _store.force();
+    }
+
+    public void persist(Path stateFile) throws IOException {
+        _store.save(stateFile);
+    }
+
+    private Result computeWeeklyResults(int week) {
+        updateKnowledge(week);
+        aggregateWork();
+        performResignations(week);
+        if (isEndOfTheQuarter(week)) {
+            reduceEmployees(week);
+        }
+        double workPerformed = aggregateWork();
+        double reducedWorkPerformed = workPerformed / _orgSize;
+
+        return new Result(week, workPerformed, reducedWorkPerformed);
+    }
+
+    private void updateKnowledge(long step) {
+        updateKnowledge(CEO, step);
+        for (int level = 0; level < _store.levels() - 1; level++) {
+            new TeamRangeTask(_store.levelStart(level), _store.levelEnd(level),
+                    (from, to) -> updateTeamsKnowledge(from, to, step)).invoke();
+        }
+    }
+
+    private void updateTeamsKnowledge(int fromManager, int toManager, long step) {
+        for (int manager = fromManager; manager < toManager; manager++) {
+            int firstChild = _store.firstChild(manager);
+            for (int child = firstChild; child < firstChild + _store.childCount(manager); child++) {
+                updateKnowledge(child, step);
+            }
+        }
+    }
+
+    void updateKnowledge(int position, long step) {
+        double coworkersQuant = 0d;
+        double managerQuant = 0d;
+        int manager = _store.parent(position);
+        if (manager != NO_MANAGER) {
+            double selfPromotion = _store.selfPromotion(position);
+            int firstCoworker = _store.firstChild(manager);
+            int lastCoworker = firstCoworker + _store.childCount(manager);
+            for (int coworker = firstCoworker; coworker < lastCoworker; coworker++) {
+                if (coworker != position)
+                    coworkersQuant += Worker.coworkerUpdate(selfPromotion, _store.selfPromotion(coworker),
+                            _store.knowledge(coworker));
+            }
+            managerQuant = Worker.managerUpdate(_store.selfPromotion(manager), _store.knowledge(manager));
+        }
+        double knowledge = Worker.learn(_store.knowledge(position), _store.learningRate(position),
+                step - _store.hireWeek(position), coworkersQuant, managerQuant);
+        _store.setKnowledge(position, knowledge);
+    }
+
+    private double aggregateWork() {
+        for (int level = _store.levels() - 1; level >= 0; level--) {
+            new TeamRangeTask(_store.levelStart(level), _store.levelEnd(level), this::aggregateWork).invoke();
+        }
+        return _store.work(CEO);
+    }
+
+    double refreshWork(int root) {
+        // descendants of a single agent form one contiguous range per level
+        int top = _store.levelOf(root);
+        int[] from = new int[_store.levels()];
+        int[] to = new int[_store.levels()];
+        from[top] = root;
+        to[top] = root + 1;
+        int deepest = top;
+        while (deepest + 1 < _store.levels() && from[deepest] < to[deepest]) {
+            int last = to[deepest] - 1;
+            from[deepest + 1] = _store.firstChild(from[deepest]);
+            to[deepest + 1] = _store.firstChild(last) + _store.childCount(last);
+            deepest++;
+        }
+        for (int level = deepest; level >= top; level--) {
+            aggregateWork(from[level], to[level]);
+        }
+        return _store.work(root);
+    }
+
+    private void aggregateWork(int from, int to) {
+        for (int position = from; position < to; position++) {
+            double selfWork = _store.knowledge(position) * _knowledgeUsabilityRate;
+            int firstChild = _store.firstChild(position);
+            int lastChild = firstChild + _store.childCount(position);
+            if (firstChild == lastChild) {
+                _store.setWork(position, selfWork);
+            } else {
+                double subordinatesWork = 0d;
+                for (int child = firstChild; child < lastChild; child++) {
+                    subordinatesWork += _store.work(child);
+                }
+                _store.setWork(position, selfWork * subordinatesWork);
+            }
+        }
+    }
+
+    boolean isManager(int position) {
+        return _store.childCount(position) > 0;
+    }
+
+    private void performResignations(long step) {
+        IntStream.Builder quitingTopPerformers = IntStream.builder();
+        forEachManager(manager -> {
+            if (_store.work(manager) < 0d) {
+                int topPerformer = findTopPerformer(manager);
+                if (_promotionUtil.topPerformerResignes())
+                    quitingTopPerformers.add(topPerformer);
+            }
+        });
+        replaceEmployees(step, quitingTopPerformers.build().toArray());
+    }
+
+    private void forEachManager(IntConsumer action) {
+        for (int position = 0; position < _store.size(); position++) {
+            if (isManager(position))
+                action.accept(position);
+        }
+    }
+
+    private int findTopPerformer(int manager) {
+        int firstChild = _store.firstChild(manager);
+        int topPerformer = firstChild;
+        for (int child = firstChild + 1; child < firstChild + _store.childCount(manager); child++) {
+            if (compare(_store.knowledge(topPerformer), _store.knowledge(child)) < 0)
+                topPerformer = child;
+        }
+        return topPerformer;
+    }
+
+    private boolean shouldPromoteInternally(int position) {
+        return isManager(position) && _promotionUtil.promoteInternally(_store.levelOf(position));
+    }
+
+    private void replaceEmployees(long step, int[] positions) {
+        IntStream.Builder externalHires = IntStream.builder();
+        IntStream.Builder internalPromotions = IntStream.builder();
+        for (int position : positions) {
+            addByReplacementStatus(position, externalHires, internalPromotions);
+        }
+        replaceEmployees(step, externalHires, internalPromotions);
+    }
+
+    private void addByReplacementStatus(int position, IntStream.Builder externalHires,
+            IntStream.Builder internalPromotions) {
+        if (shouldPromoteInternally(position)) {
+            internalPromotions.add(position);
+        } else {
+            externalHires.add(position);
+        }
+    }
+
+    private void replaceEmployees(long step, IntStream.Builder externalHires, IntStream.Builder internalPromotions) {
+        int hiringWeek = hiringWeekFor(step);
+        externalHires.build().forEach(position -> hireReplacement(position, hiringWeek));
+
+        // a promoted candidate moves up into its manager's position, so an
+        // employee queued further on is looked up where it is now
+        int[] positions = internalPromotions.build().toArray();
+        int[] employeeIds = Arrays.stream(positions).map(_store::employeeId).toArray();
+        Map<Integer, Integer> promotedTo = new HashMap<>();
+        for (int i = 0; i < positions.length; i++) {
+            int position = promotedTo.getOrDefault(employeeIds[i], positions[i]);
+            promoteReplacementInternally(position, hiringWeek);
+            promotedTo.put(_store.employeeId(position), position);
+        }
+    }
+
+    private void hireReplacement(int position, int hireWeek) {
+        // subordinates stay in their positions, so they simply report to the new hire
+        _employeeFactory.createAgent(_store, position, hireWeek, isManager(position));
+    }
+
+    private int hiringWeekFor(long step) {
+        return (int) step - 1;
+    }
+
+    private void promoteReplacementInternally(int position, int hiringWeek) {
+        int promotionCandidate = peekEmployeeForPromotion(position);
+        _store.copyAgent(promotionCandidate, position);
+        hireReplacement(promotionCandidate, hiringWeek);
+        // update knowledge - not all of what you know could be applied one level above
+        _store.setKnowledge(position, _store.knowledge(position) * _promotionUtil.getLevelUpKnowledgeApplicability());
+    }
+
+    private int peekEmployeeForPromotion(int manager) {
+        if (_promotionUtil.shouldPromoteTopPerformer()) {
+            return findTopPerformer(manager);
+        }
+
+        return findBestSelfPromoter(manager);
+    }
+
+    private int findBestSelfPromoter(int manager) {
+        double averageTeamMemberWork = getAverageTeamMemberWork(manager);
+        int firstChild = _store.firstChild(manager);
+        int bestSelfPromoter = firstChild;
+        for (int child = firstChild + 1; child < firstChild + _store.childCount(manager); child++) {
+            if (compare(virtualWork(bestSelfPromoter, averageTeamMemberWork), virtualWork(child, averageTeamMemberWork)) < 0)
+                bestSelfPromoter = child;
+        }
+        return bestSelfPromoter;
+    }
+
+    private int findWorstPerformer(int manager) {
+        double averageTeamMemberWork = getAverageTeamMemberWork(manager);
+        int firstChild = _store.firstChild(manager);
+        int worstPerformer = firstChild;
+        for (int child = firstChild + 1; child < firstChild + _store.childCount(manager); child++) {
+            if (compare(virtualWork(worstPerformer, averageTeamMemberWork), virtualWork(child, averageTeamMemberWork)) > 0)
+                worstPerformer = child;
+        }
+        return worstPerformer;
+    }
+
+    private double getAverageTeamMemberWork(int manager) {
+        refreshWork(manager);
+        return team(manager).mapToDouble(_store::work).reduce(Double::sum).orElse(1d);
+    }
+
+    double virtualWork(int position, double averageTeamMemberWork) {
+        return _store.selfPromotion(position) + _store.work(position) / averageTeamMemberWork;
+    }
+
+    private static int compare(double a, double b) {
+        // same ordering as the comparators used by Corporation
+        return (int) Math.floor(a - b);
+    }
+
+    private boolean isEndOfTheQuarter(long step) {
+        return step % 13 == 0;
+    }
+
+    private void reduceEmployees(long step) {
+        IntStream.Builder externalHires = IntStream.builder();
+        IntStream.Builder internalPromotions = IntStream.builder();
+        forEachManager(manager -> {
+            if (_promotionUtil.shouldReducePersonel()) {
+                int reducedEmployee = _promotionUtil.shouldReduceSelfPromoter()
+                        ? findBestSelfPromoter(manager)
+                        : findWorstPerformer(manager);
+                // Corporation draws the promotion decision right after the reduction ones
+                addByReplacementStatus(reducedEmployee, externalHires, internalPromotions);
+            }
+        });
+        replaceEmployees(step, externalHires, internalPromotions);
+    }
+
+    private interface RangeAction {
+
+        void accept(int from, int to);
+
+    }
+
+    /**
+     * Applies an action to a range of agents of a single level, splitting the
+     * range in halves while it covers more than SPLIT_THRESHOLD agents
+     * and their subordinates. Teams never straddle two ranges, and an agent only
+     * depends on its own team and the level above, so the result does not
+     * depend on how the range was split.
+     */
+    private final class TeamRangeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 6104373496283954131L;
+
+        private final int _from;
+        private final int _to;
+        private final RangeAction _action;
+
+        TeamRangeTask(int from, int to, RangeAction action) {
+            _from = from;
+            _to = to;
+            _action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > 1 && weight() > SPLIT_THRESHOLD) {
+                int middle = (_from + _to) >>> 1;
+                invokeAll(new TeamRangeTask(_from, middle, _action), new TeamRangeTask(middle, _to, _action));
+            } else {
+                _action.accept(_from, _to);
+            }
+        }
+
+        private int weight() {
+            int last = _to - 1;
+            int subordinates = _store.firstChild(last) + _store.childCount(last) - _store.firstChild(_from);
+            return _to - _from + subordinates;
+        }
+
+    }
+
+    AgentStore getStore() {
+        return _store;
+    }
+
+    @Override
+    public double getKnowledgeUsabilityRate() {
+        return _knowledgeUsabilityRate;
+    }
+
+    @Override
+    public List<Result> getResults() {
+        return _results;
+    }
+
+}
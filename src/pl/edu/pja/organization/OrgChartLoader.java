@@ -0,0 +1,309 @@
+package pl.edu.pja.organization;
+
+import static pl.edu.pja.organization.AgentStore.NO_MANAGER;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Loads a real org chart exported as an edge list with one
+ * {@code employeeId,managerId} pair per employee. The CEO is the only employee
+ * without a manager, which is marked with an empty field or {@code -1}.
+ * <p>
+ * Files ending with {@code .csv} are read as UTF-8 text (a byte order mark and
+ * a header line, i.e. a first line without any digit, are skipped), anything
+ * else as a sequence of little-endian int pairs.
+ */
+public class OrgChartLoader {
+
+    private static final int NO_ROW = -1;
+
+    public static AgentStore load(Path edgeFile) throws IOException {
+        return load(edgeFile, AgentStore::allocate);
+    }
+
+    public static AgentStore load(Path edgeFile, Path stateFile) throws IOException {
+        return load(edgeFile, levelSizes -> AgentStore.create(stateFile, levelSizes));
+    }
+
+    private static AgentStore load(Path edgeFile, StoreFactory storeFactory) throws IOException {
+        EdgeList edges = readEdges(edgeFile);
+        return new OrgChartBuilder(edges).build(storeFactory);
+    }
+
+    private static EdgeList readEdges(Path edgeFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(edgeFile, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Org chart file is too large: " + edgeFile);
+
+            MappedByteBuffer bytes = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            if (edgeFile.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv"))
+                return readCsvEdges(bytes);
+            return readBinaryEdges(bytes.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer());
+        }
+    }
+
+    private static EdgeList readBinaryEdges(IntBuffer ints) {
+        if (ints.remaining() % 2 != 0)
+            throw new IllegalArgumentException("Org chart must consist of employee and manager id pairs");
+
+        EdgeList edges = new EdgeList(ints.remaining() / 2);
+        while (ints.hasRemaining()) {
+            edges.add(ints.get(), ints.get());
+        }
+        return edges;
+    }
+
+    private static EdgeList readCsvEdges(MappedByteBuffer bytes) {
+        // rough guess of the number of rows, the list grows if needed
+        EdgeList edges = new EdgeList(Math.max(16, bytes.remaining() / 12));
+        int line = 1;
+        skipByteOrderMark(bytes);
+        if (startsWithHeader(bytes))
+            line = skipLine(bytes, line);
+        while (bytes.hasRemaining()) {
+            skipBlanks(bytes);
+            if (isEndOfLine(bytes)) {
+                line = skipLine(bytes, line);
+                continue;
+            }
+            int employeeId = parseId(bytes, line, false);
+            skipBlanks(bytes);
+            if (!bytes.hasRemaining() || bytes.get() != ',')
+                throw new IllegalArgumentException("Line " + line + ": expected employeeId,managerId");
+            skipBlanks(bytes);
+            int managerId = parseId(bytes, line, true);
+            skipBlanks(bytes);
+            if (!isEndOfLine(bytes))
+                throw new IllegalArgumentException("Line " + line + ": unexpected trailing characters");
+            edges.add(employeeId, managerId);
+            line = skipLine(bytes, line);
+        }
+        return edges;
+    }
+
+    private static void skipByteOrderMark(MappedByteBuffer bytes) {
+        if (bytes.remaining() >= 3 && bytes.get(0) == (byte) 0xef && bytes.get(1) == (byte) 0xbb
+                && bytes.get(2) == (byte) 0xbf)
+            bytes.position(3);
+    }
+
+    private static boolean startsWithHeader(MappedByteBuffer bytes) {
+        // every edge has an employee id, so a line without digits cannot be one,
+        // while a malformed edge is still parsed and reported with its line number
+        for (int index = bytes.position(); index < bytes.limit() && bytes.get(index) != '\n'; index++) {
+            if (Character.isDigit(bytes.get(index)))
+                return false;
+        }
+        return true;
+    }
+
+    private static int parseId(MappedByteBuffer bytes, int line, boolean mayBeEmpty) {
+        boolean negative = bytes.hasRemaining() && bytes.get(bytes.position()) == '-';
+        if (negative)
+            bytes.get();
+        long value = 0;
+        int digits = 0;
+        while (bytes.hasRemaining() && Character.isDigit(bytes.get(bytes.position()))) {
+            value = value * 10 + (bytes.get() - '0');
+            if (++digits > 10)
+                throw new IllegalArgumentException("Line " + line + ": id out of range");
+        }
+        if (digits == 0) {
+            if (mayBeEmpty && !negative)
+                return NO_MANAGER;
+            throw new IllegalArgumentException("Line " + line + ": expected an id");
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Line " + line + ": id out of range");
+        return (int) value;
+    }
+
+    private static void skipBlanks(MappedByteBuffer bytes) {
+        while (bytes.hasRemaining() && (bytes.get(bytes.position()) == ' ' || bytes.get(bytes.position()) == '\t'
+                || bytes.get(bytes.position()) == '\r'))
+            bytes.get();
+    }
+
+    private static boolean isEndOfLine(MappedByteBuffer bytes) {
+        return !bytes.hasRemaining() || bytes.get(bytes.position()) == '\n';
+    }
+
+    private static int skipLine(MappedByteBuffer bytes, int line) {
+        while (bytes.hasRemaining() && bytes.get() != '\n')
+            ;
+        return line + 1;
+    }
+
+    private interface StoreFactory {
+
+        AgentStore create(int[] levelSizes) throws IOException;
+
+    }
+
+    private static final class EdgeList {
+
+        private int[] _employees;
+        private int[] _managers;
+        private int _size;
+
+        EdgeList(int capacity) {
+            _employees = new int[capacity];
+            _managers = new int[capacity];
+        }
+
+        void add(int employeeId, int managerId) {
+            if (_size == _employees.length) {
+                int capacity = Math.max(16, _size + (_size >> 1));
+                _employees = Arrays.copyOf(_employees, capacity);
+                _managers = Arrays.copyOf(_managers, capacity);
+            }
+            _employees[_size] = employeeId;
+            _managers[_size] = managerId;
+            _size++;
+        }
+
+    }
+
+    /**
+     * Turns the edge list into breadth-first ordered parent/child indices,
+     * rejecting anything that is not a single tree on the way.
+     */
+    private static final class OrgChartBuilder {
+
+        private final EdgeList _edges;
+        private final int[] _rowIndex;
+        private final int _mask;
+
+        OrgChartBuilder(EdgeList edges) {
+            if (edges._size == 0)
+                throw new IllegalArgumentException("Org chart is empty");
+            if (edges._size > AgentStore.MAX_AGENTS)
+                throw new IllegalArgumentException("Organization cannot have more than " + AgentStore.MAX_AGENTS + " agents");
+
+            _edges = edges;
+            _rowIndex = new int[Integer.highestOneBit(edges._size) << 2];
+            _mask = _rowIndex.length - 1;
+            Arrays.fill(_rowIndex, NO_ROW);
+            for (int row = 0; row < edges._size; row++) {
+                indexRow(row);
+            }
+        }
+
+        AgentStore build(StoreFactory storeFactory) throws IOException {
+            int size = _edges._size;
+            int root = NO_ROW;
+            int[] managerRow = new int[size];
+            int[] childCount = new int[size];
+            for (int row = 0; row < size; row++) {
+                int managerId = _edges._managers[row];
+                if (managerId == NO_MANAGER) {
+                    if (root != NO_ROW)
+                        throw new IllegalArgumentException("Org chart has more than one CEO: " + _edges._employees[root]
+                                + " and " + _edges._employees[row]);
+                    root = row;
+                    managerRow[row] = NO_ROW;
+                } else {
+                    managerRow[row] = rowOf(managerId);
+                    if (managerRow[row] == NO_ROW)
+                        throw new IllegalArgumentException("Unknown manager " + managerId + " of employee " + _edges._employees[row]);
+                    childCount[managerRow[row]]++;
+                }
+            }
+            if (root == NO_ROW)
+                throw new IllegalArgumentException("Org chart has no CEO");
+
+            // group the rows by manager, keeping the order of the file within a team
+            int[] firstChildRow = new int[size + 1];
+            for (int row = 0; row < size; row++) {
+                firstChildRow[row + 1] = firstChildRow[row] + childCount[row];
+            }
+            int[] childRows = new int[size];
+            int[] next = Arrays.copyOf(firstChildRow, size);
+            for (int row = 0; row < size; row++) {
+                if (managerRow[row] != NO_ROW)
+                    childRows[next[managerRow[row]]++] = row;
+            }
+
+            // breadth-first walk, which renumbers the rows into store positions
+            int[] rowAt = new int[size];
+            int[] levelEnds = new int[size + 1];
+            int levels = 0;
+            rowAt[0] = root;
+            int tail = 1;
+            int levelEnd = 1;
+            for (int position = 0; position < tail; position++) {
+                if (position == levelEnd) {
+                    levelEnds[levels++] = levelEnd;
+                    levelEnd = tail;
+                }
+                int row = rowAt[position];
+                for (int child = firstChildRow[row]; child < firstChildRow[row] + childCount[row]; child++) {
+                    rowAt[tail++] = childRows[child];
+                }
+            }
+            levelEnds[levels++] = levelEnd;
+            if (tail != size)
+                throw new IllegalArgumentException("Org chart is not a tree: " + (size - tail)
+                        + " employees are not reachable from the CEO");
+
+            int[] levelSizes = new int[levels];
+            for (int level = 0; level < levels; level++) {
+                levelSizes[level] = levelEnds[level] - (level == 0 ? 0 : levelEnds[level - 1]);
+            }
+            AgentStore store = storeFactory.create(levelSizes);
+
+            int[] positionOf = new int[size];
+            int firstChild = 1;
+            for (int position = 0; position < size; position++) {
+                int row = rowAt[position];
+                int parent = position == 0 ? NO_MANAGER : positionOf[managerRow[row]];
+                store.link(position, parent, firstChild, childCount[row]);
+                store.setEmployeeId(position, _edges._employees[row]);
+                firstChild += childCount[row];
+                positionOf[row] = position;
+            }
+            return store;
+        }
+
+        private void indexRow(int row) {
+            int employeeId = _edges._employees[row];
+            if (employeeId == NO_MANAGER)
+                throw new IllegalArgumentException("Employee id " + NO_MANAGER + " is reserved for a missing manager");
+
+            int slot = hash(employeeId);
+            while (_rowIndex[slot] != NO_ROW) {
+                if (_edges._employees[_rowIndex[slot]] == employeeId)
+                    throw new IllegalArgumentException("Employee " + employeeId + " is listed more than once");
+                slot = (slot + 1) & _mask;
+            }
+            _rowIndex[slot] = row;
+        }
+
+        private int rowOf(int employeeId) {
+            int slot = hash(employeeId);
+            while (_rowIndex[slot] != NO_ROW) {
+                if (_edges._employees[_rowIndex[slot]] == employeeId)
+                    return _rowIndex[slot];
+                slot = (slot + 1) & _mask;
+            }
+            return NO_ROW;
+        }
+
+        private int hash(int employeeId) {
+            int hash = employeeId * 0x9e3779b9;
+            return (hash ^ (hash >>> 16)) & _mask;
+        }
+
+    }
+
+}
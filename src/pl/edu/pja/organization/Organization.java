@@ -10,6 +10,9 @@ public abstract class Organization extends SimState {
 
     private static final long serialVersionUID = 9048955491941212328L;
 
+    // smallest number of agents worth handing over to another fork-join worker
+    static final int SPLIT_THRESHOLD = 4096;
+
     public Organization(long seed) {
         super(seed);
     }
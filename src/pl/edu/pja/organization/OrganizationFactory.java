@@ -1,5 +1,9 @@
 package pl.edu.pja.organization;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
+import pl.edu.pja.event.ChurnEventRecorder;
 import pl.edu.pja.strategy.SimulationStrategy;
 
 public class OrganizationFactory {
@@ -8,4 +12,27 @@ public class OrganizationFactory {
 		return new Corporation(System.currentTimeMillis(), levels, subordinates, knowledgeUsabilityRate, strategy);
 	}
 
+	public static Organization createCorporation(int levels, int subordinates, double knowledgeUsabilityRate, SimulationStrategy strategy,
+			ChurnEventRecorder eventRecorder) {
+		return new Corporation(System.currentTimeMillis(), levels, subordinates, knowledgeUsabilityRate, strategy, eventRecorder);
+	}
+
+	public static OffHeapCorporation createOffHeapCorporation(int levels, int subordinates, double knowledgeUsabilityRate, SimulationStrategy strategy) {
+		return new OffHeapCorporation(System.currentTimeMillis(), levels, subordinates, knowledgeUsabilityRate, strategy);
+	}
+
+	public static OffHeapCorporation createOffHeapCorporation(Path orgChart, double knowledgeUsabilityRate, SimulationStrategy strategy) throws IOException {
+		return new OffHeapCorporation(System.currentTimeMillis(), OrgChartLoader.load(orgChart), knowledgeUsabilityRate, strategy);
+	}
+
+	public static OffHeapCorporation createMappedCorporation(int levels, int subordinates, double knowledgeUsabilityRate, SimulationStrategy strategy,
+			Path stateFile) throws IOException {
+		return new OffHeapCorporation(System.currentTimeMillis(), levels, subordinates, knowledgeUsabilityRate, strategy, stateFile);
+	}
+
+	public static OffHeapCorporation createMappedCorporation(Path orgChart, double knowledgeUsabilityRate, SimulationStrategy strategy,
+			Path stateFile) throws IOException {
+		return new OffHeapCorporation(System.currentTimeMillis(), OrgChartLoader.load(orgChart, stateFile), knowledgeUsabilityRate, strategy);
+	}
+
 }
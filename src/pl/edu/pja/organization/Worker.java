@@ -16,10 +16,11 @@ public class Worker implements Employee {
     private double _knowledge;
     private double _selfPromotion;
     private double _learningRate;
+    private final boolean _man;
 
     public Worker(Organization organization, int employeeId, int hireWeek, double initialKnowledge,
             double selfPromotion,
-            double learningRate) {
+            double learningRate, boolean man) {
         _hireWeek = hireWeek;
         _organization = organization;
         _employeeId = employeeId;
@@ -27,21 +28,25 @@ public class Worker implements Employee {
         _knowledge = initialKnowledge;
         _selfPromotion = selfPromotion;
         _learningRate = learningRate;
-
+        _man = man;
     }
 
     @Override
     public void updateKnowledge(long step) {
         double coworkersQuant = talkToCoworkers();
         double managerQuant = talkToManager();
-        double reducedLearningRate = _learningRate * KNOWLEDGE_AQUISITION_RATE / (step - _hireWeek);
-        _knowledge = _knowledge + reducedLearningRate * (_knowledge + coworkersQuant + managerQuant);
+        _knowledge = learn(_knowledge, _learningRate, step - _hireWeek, coworkersQuant, managerQuant);
+    }
+
+    static double learn(double knowledge, double learningRate, long weeksEmployed, double coworkersQuant,
+            double managerQuant) {
+        double reducedLearningRate = learningRate * KNOWLEDGE_AQUISITION_RATE / weeksEmployed;
+        return knowledge + reducedLearningRate * (knowledge + coworkersQuant + managerQuant);
     }
 
     private double talkToCoworkers() {
         Set<Employee> coworkers = requireNonNull(_organization.getCoworkers(this));
         Optional<Double> maybeCoworkersUpdate = coworkers.stream()
-                .parallel()
                 .map(this::computeCoworkersKnowledgeUpdate)
                 .reduce(Double::sum);
         return maybeCoworkersUpdate.orElse(Double.valueOf(0d)).doubleValue();
@@ -50,15 +55,17 @@ public class Worker implements Employee {
     private Double computeCoworkersKnowledgeUpdate(Employee coworker) {
         if (coworker instanceof Worker) {
             Worker other = (Worker) coworker;
-            double attitude = _selfPromotion + other._selfPromotion;
-            double update = 0.8d - 1.33d * attitude * other._knowledge;
-
-            return Double.valueOf(update);
+            return Double.valueOf(coworkerUpdate(_selfPromotion, other._selfPromotion, other._knowledge));
         }
 
         return Double.valueOf(0d);
     }
 
+    static double coworkerUpdate(double selfPromotion, double coworkerSelfPromotion, double coworkerKnowledge) {
+        double attitude = selfPromotion + coworkerSelfPromotion;
+        return 0.8d - 1.33d * attitude * coworkerKnowledge;
+    }
+
     private double talkToManager() {
         Optional<Employee> maybeManager = _organization.getManager(this);
         // make sure there is manager (CEO does not have one)
@@ -70,13 +77,17 @@ public class Worker implements Employee {
     private Double computeManagerUpdate(Employee manager) {
         if (manager instanceof Worker) {
             Worker mgr = (Worker) manager;
-            double mgrAttitude = 1 - mgr._selfPromotion;
-            return Double.valueOf(mgrAttitude * mgr._knowledge);
+            return Double.valueOf(managerUpdate(mgr._selfPromotion, mgr._knowledge));
         }
 
         return Double.valueOf(0d);
     }
 
+    static double managerUpdate(double managerSelfPromotion, double managerKnowledge) {
+        double mgrAttitude = 1 - managerSelfPromotion;
+        return mgrAttitude * managerKnowledge;
+    }
+
     public double getInitialKnowledge() {
         return _initialKnowledge;
     }
@@ -118,6 +129,16 @@ public class Worker implements Employee {
         _knowledge = knowledge;
     }
 
+    @Override
+    public int getEmployeeId() {
+        return _employeeId;
+    }
+
+    @Override
+    public boolean isMan() {
+        return _man;
+    }
+
     @Override
     public int hashCode() {
         return _employeeId;
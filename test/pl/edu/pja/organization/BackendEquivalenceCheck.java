@@ -0,0 +1,57 @@
+package pl.edu.pja.organization;
+
+import java.util.List;
+
+import pl.edu.pja.strategy.SimulationStrategy;
+
+/**
+ * Runs {@link Corporation} and {@link OffHeapCorporation} with the same seeds
+ * and fails if their weekly results are not bit-identical. Seed 38 at 5 x 8
+ * reduces a manager and one of its subordinates in the same quarter and
+ * promotes internally for both.
+ * <p>
+ * {@code java -cp <classes>:lib/mason.19.jar pl.edu.pja.organization.BackendEquivalenceCheck}
+ */
+public class BackendEquivalenceCheck {
+
+    private static final double KNOWLEDGE_USABILITY_RATE = 0.75d;
+    private static final int[][] CASES = {
+            // seed, levels, subordinates
+            { 38, 5, 8 },
+            { 42, 3, 8 },
+            { 1, 3, 8 },
+            { 2, 3, 8 },
+            { 3, 3, 8 },
+    };
+
+    public static void main(String[] args) {
+        boolean identical = true;
+        for (int[] c : CASES) {
+            int divergenceWeek = firstDivergence(c[0], c[1], c[2]);
+            System.out.printf("seed %d, %d x %d: %s%n", c[0], c[1], c[2],
+                    divergenceWeek < 0 ? "identical" : "diverges in week " + divergenceWeek);
+            identical &= divergenceWeek < 0;
+        }
+        if (!identical)
+            throw new AssertionError("OffHeapCorporation diverges from Corporation");
+    }
+
+    private static int firstDivergence(long seed, int levels, int subordinates) {
+        Organization reference = new Corporation(seed, levels, subordinates, KNOWLEDGE_USABILITY_RATE,
+                SimulationStrategy.NO_GENDER_QUOTA);
+        Organization offHeap = new OffHeapCorporation(seed, levels, subordinates, KNOWLEDGE_USABILITY_RATE,
+                SimulationStrategy.NO_GENDER_QUOTA);
+        reference.start();
+        offHeap.start();
+
+        List<Result> expected = reference.getResults();
+        List<Result> actual = offHeap.getResults();
+        for (int i = 0; i < expected.size(); i++) {
+            if (Double.doubleToLongBits(expected.get(i).getWorkPerformed())
+                    != Double.doubleToLongBits(actual.get(i).getWorkPerformed()))
+                return expected.get(i).getWeek();
+        }
+        return expected.size() == actual.size() ? -1 : expected.size();
+    }
+
+}